@@ -22,6 +22,14 @@ public class Json {
     return load(jsonFile, false);
   }
 
+  // For readers that must not create or modify the file
+  static Json loadReadOnly(Path jsonFile) throws IOException {
+    Json j = new Json();
+    j.channel = FileChannel.open(jsonFile, StandardOpenOption.READ);
+    j.store = j.channel.map(FileChannel.MapMode.READ_ONLY, 0, j.channel.size());
+    return j;
+  }
+
   private Json openFile(Path jsonFile, boolean isGzip) throws IOException {
     this.channel = FileChannel.open(jsonFile, StandardOpenOption.READ, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
     this.store = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
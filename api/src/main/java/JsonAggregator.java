@@ -0,0 +1,254 @@
+package org.agmip.data.json;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Computes numeric aggregates over a document in a single pass of a
+ * {@link JsonPullParser}, over JSON text or its {@link JsonBinary} form.
+ *
+ * Paths are dotted object names where {@code *} matches any name or array
+ * element, e.g. {@code weathers.*.dailyWeather.*.tmax}. When a group path
+ * such as {@code weathers.*.wst_id} is set, values are grouped by the key
+ * found in the enclosing object, whether it comes before or after the values.
+ * Values outside any group end up under the {@code null} group.
+ *
+ * Results of separate runs (e.g. one per file or thread) can be combined
+ * with {@link Result#merge(Result)}.
+ */
+public class JsonAggregator {
+  public enum Function {
+    COUNT,
+    SUM,
+    MEAN,
+    MIN,
+    MAX,
+  }
+
+  private final String[] groupPath;
+  private final String[][] paths;
+  private final Function[] functions;
+
+  private JsonAggregator(Builder builder) {
+    this.groupPath = builder.groupPath;
+    this.paths = builder.paths.toArray(new String[builder.paths.size()][]);
+    this.functions = builder.functions.toArray(new Function[builder.functions.size()]);
+  }
+
+  public Result aggregate(JsonPullParser parser) throws IOException {
+    Result result = new Result(groupPath, paths, functions);
+    Accumulator[] outside = null;
+    Accumulator[] scope = null;
+    String scopeKey = null;
+    int groupDepth = (groupPath == null) ? -1 : groupPath.length;
+    JsonPath path = new JsonPath();
+
+    while (parser.hasNext()) {
+      JsonToken t = parser.next();
+      int depth = parser.getDepth();
+      path.update(t, parser);
+      switch (t) {
+      case START_OBJECT:
+        if (depth == groupDepth && path.matches(groupPath, depth-1)) {
+          scope = Result.newAccumulators(paths.length);
+          scopeKey = null;
+        }
+        break;
+      case END_OBJECT:
+        if (scope != null && depth+1 == groupDepth) {
+          Accumulator[] target = result.group(scopeKey);
+          for (int i=0; i < scope.length; i++) {
+            target[i].merge(scope[i]);
+          }
+          scope = null;
+        }
+        break;
+      case VALUE_STRING:
+      case VALUE_NUMBER:
+      case VALUE_BOOLEAN:
+      case VALUE_NULL:
+        if (scope != null && depth == groupDepth && path.matches(groupPath, depth)) {
+          scopeKey = parser.get();
+        }
+        for (int i=0; i < paths.length; i++) {
+          if (paths[i].length == depth && path.matches(paths[i], depth)) {
+            double value = valueOf(parser, t);
+            if (Double.isNaN(value)) {
+              continue;
+            }
+            if (scope != null) {
+              scope[i].add(value);
+            } else {
+              if (outside == null) {
+                outside = result.group(null);
+              }
+              outside[i].add(value);
+            }
+          }
+        }
+        break;
+      default:
+        break;
+      }
+    }
+    return result;
+  }
+
+  // Returns NaN for anything that should not be aggregated
+  private static double valueOf(JsonPullParser parser, JsonToken t) {
+    double value = Double.NaN;
+    if (t == JsonToken.VALUE_NUMBER) {
+      try {
+        value = parser.getAsDouble();
+      } catch (NumberFormatException ex) {
+        // The text parser lets malformed numbers such as "-" through
+      }
+    } else if (t == JsonToken.VALUE_STRING) {
+      // Numbers are frequently stored as strings in AgMIP data
+      value = JsonNumbers.parseDouble(parser.get());
+    }
+    return Double.isInfinite(value) ? Double.NaN : value;
+  }
+
+  public static class Accumulator {
+    private long count = 0;
+    private double sum = 0.0;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    public void add(double value) {
+      count++;
+      sum += value;
+      if (value < min) {
+        min = value;
+      }
+      if (value > max) {
+        max = value;
+      }
+    }
+
+    public void merge(Accumulator other) {
+      count += other.count;
+      sum += other.sum;
+      min = Math.min(min, other.min);
+      max = Math.max(max, other.max);
+    }
+
+    public long getCount() {
+      return count;
+    }
+
+    public double get(Function fn) {
+      switch (fn) {
+      case COUNT:
+        return count;
+      case SUM:
+        return sum;
+      case MEAN:
+        return (count == 0) ? Double.NaN : sum / count;
+      case MIN:
+        return (count == 0) ? Double.NaN : min;
+      case MAX:
+        return (count == 0) ? Double.NaN : max;
+      default:
+        throw new IllegalArgumentException("Unknown function " + fn);
+      }
+    }
+  }
+
+  public static class Result {
+    private final String[] groupPath;
+    private final String[][] paths;
+    private final Function[] functions;
+    private final Map<String, Accumulator[]> groups = new LinkedHashMap<>();
+
+    private Result(String[] groupPath, String[][] paths, Function[] functions) {
+      this.groupPath = groupPath;
+      this.paths = paths;
+      this.functions = functions;
+    }
+
+    private static Accumulator[] newAccumulators(int size) {
+      Accumulator[] accs = new Accumulator[size];
+      for (int i=0; i < size; i++) {
+        accs[i] = new Accumulator();
+      }
+      return accs;
+    }
+
+    private Accumulator[] group(String key) {
+      Accumulator[] accs = groups.get(key);
+      if (accs == null) {
+        accs = newAccumulators(functions.length);
+        groups.put(key, accs);
+      }
+      return accs;
+    }
+
+    public Set<String> getGroups() {
+      return Collections.unmodifiableSet(groups.keySet());
+    }
+
+    public double get(String group, int index) {
+      Accumulator[] accs = groups.get(group);
+      if (accs == null) {
+        return (functions[index] == Function.COUNT) ? 0.0 : Double.NaN;
+      }
+      return accs[index].get(functions[index]);
+    }
+
+    public double get(int index) {
+      return get(null, index);
+    }
+
+    public Accumulator getAccumulator(String group, int index) {
+      Accumulator[] accs = groups.get(group);
+      return (accs == null) ? null : accs[index];
+    }
+
+    public Result merge(Result other) {
+      if (! Arrays.equals(other.functions, functions)
+          || ! Arrays.deepEquals(other.paths, paths)
+          || ! Arrays.equals(other.groupPath, groupPath)) {
+        throw new IllegalArgumentException("Cannot merge results of different aggregations");
+      }
+      for (Map.Entry<String, Accumulator[]> e : other.groups.entrySet()) {
+        Accumulator[] target = group(e.getKey());
+        for (int i=0; i < target.length; i++) {
+          target[i].merge(e.getValue()[i]);
+        }
+      }
+      return this;
+    }
+  }
+
+  public static class Builder {
+    private String[] groupPath = null;
+    private final List<String[]> paths = new ArrayList<>();
+    private final List<Function> functions = new ArrayList<>();
+
+    public Builder groupBy(String path) {
+      this.groupPath = JsonPath.compile(path);
+      return this;
+    }
+
+    public Builder aggregate(String path, Function fn) {
+      this.paths.add(JsonPath.compile(path));
+      this.functions.add(fn);
+      return this;
+    }
+
+    public JsonAggregator build() {
+      if (paths.isEmpty()) {
+        throw new IllegalStateException("No aggregates defined");
+      }
+      return new JsonAggregator(this);
+    }
+  }
+}
@@ -0,0 +1,471 @@
+package org.agmip.data.json;
+
+import java.io.CharConversionException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A compact binary form of a {@link Json} document, stored next to the
+ * source file and read back through a {@link JsonBinaryParser}.
+ *
+ * Layout (big endian):
+ * <pre>
+ *   int    magic "DRKB"
+ *   int    version
+ *   long   source size
+ *   long   source last modified (ms)
+ *   int    offset of the key dictionary
+ *   int    number of keys
+ *   ...    tokens, each a one byte tag followed by its payload
+ *   ...    keys, each an int length followed by UTF-8 bytes
+ * </pre>
+ *
+ * Containers carry their member count and body length, object names are
+ * indexes into the key dictionary and strings are length prefixed. Numbers
+ * are stored as a long or double when that value prints back as the
+ * original text; otherwise the double (NaN if the text is not a number) is
+ * followed by the original text, so number text and scale are always
+ * preserved.
+ *
+ * {@link #load(Path)} falls back to the JSON text when the sidecar cannot be
+ * written or read; {@link #parser()} works either way.
+ */
+public class JsonBinary {
+  static final int MAGIC = 0x44524B42;
+  static final int VERSION = 2;
+  static final int HEADER_SIZE = 32;
+  static final String EXTENSION = ".drkb";
+
+  static final byte START_OBJECT = 1;
+  static final byte END_OBJECT = 2;
+  static final byte START_ARRAY = 3;
+  static final byte END_ARRAY = 4;
+  static final byte OBJECT_NAME = 5;
+  static final byte STRING = 6;
+  static final byte LONG = 7;
+  static final byte DOUBLE = 8;
+  static final byte NUMBER = 9;
+  static final byte TRUE = 10;
+  static final byte FALSE = 11;
+  static final byte NULL = 12;
+
+  private FileChannel channel;
+  private MappedByteBuffer store;
+  private String[] keys;
+  private int streamEnd;
+  private Json source;
+
+  protected JsonBinary(){}
+
+  public static JsonBinary load(Path jsonFile) throws IOException {
+    return load(jsonFile, sidecar(jsonFile));
+  }
+
+  public static JsonBinary load(Path jsonFile, Path binaryFile) throws IOException {
+    // A missing or unreadable source is reported as is; only problems with
+    // the sidecar (e.g. a read-only input directory) fall back to the text
+    Json json = Json.loadReadOnly(jsonFile);
+    boolean fallback = false;
+    try {
+      long size = Files.size(jsonFile);
+      long modified = Files.getLastModifiedTime(jsonFile).toMillis();
+      if (isCurrent(binaryFile, size, modified)) {
+        try {
+          return open(binaryFile);
+        } catch (IOException ex) {
+          // Damaged sidecar with a matching header, rebuild it
+        }
+      }
+      transcode(json, jsonFile, size, modified, binaryFile);
+      return open(binaryFile);
+    } catch (CharConversionException ex) {
+      // Invalid UTF-8 in the source itself
+      throw ex;
+    } catch (IOException ex) {
+      fallback = true;
+      JsonBinary b = new JsonBinary();
+      b.source = json;
+      return b;
+    } finally {
+      if (! fallback) {
+        json.close();
+      }
+    }
+  }
+
+  public static JsonBinary open(Path binaryFile) throws IOException {
+    return new JsonBinary().openFile(binaryFile);
+  }
+
+  public static Path sidecar(Path jsonFile) {
+    return jsonFile.resolveSibling(jsonFile.getFileName().toString() + EXTENSION);
+  }
+
+  public static boolean isCurrent(Path jsonFile, Path binaryFile) throws IOException {
+    return isCurrent(binaryFile, Files.size(jsonFile), Files.getLastModifiedTime(jsonFile).toMillis());
+  }
+
+  private static boolean isCurrent(Path binaryFile, long size, long modified) throws IOException {
+    if (! Files.isRegularFile(binaryFile)) {
+      return false;
+    }
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    try (FileChannel ch = FileChannel.open(binaryFile, StandardOpenOption.READ)) {
+      while (header.hasRemaining() && ch.read(header) != -1);
+    }
+    if (header.hasRemaining()) {
+      return false;
+    }
+    header.flip();
+    return header.getInt() == MAGIC
+      && header.getInt() == VERSION
+      && header.getLong() == size
+      && header.getLong() == modified;
+  }
+
+  public static void transcode(Path jsonFile, Path binaryFile) throws IOException {
+    Json json = Json.loadReadOnly(jsonFile);
+    try {
+      transcode(json, jsonFile, Files.size(jsonFile), Files.getLastModifiedTime(jsonFile).toMillis(), binaryFile);
+    } finally {
+      json.close();
+    }
+  }
+
+  private static void transcode(Json json, Path jsonFile, long size, long modified, Path binaryFile) throws IOException {
+    // Concurrent runs may rebuild the same sidecar, so each gets its own file
+    Path tmp = Files.createTempFile(binaryFile.toAbsolutePath().getParent(), binaryFile.getFileName().toString(), ".tmp");
+    try {
+      try (Writer w = new Writer(FileChannel.open(tmp, StandardOpenOption.WRITE))) {
+        transcode(new JsonParser.Builder(json).build(), w, size, modified);
+      }
+      copyReadPermissions(jsonFile, tmp);
+      Files.move(tmp, binaryFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException | RuntimeException ex) {
+      Files.deleteIfExists(tmp);
+      throw ex;
+    }
+  }
+
+  // Temp files are private to the owner; whoever can read the source should
+  // also be able to read its sidecar
+  private static void copyReadPermissions(Path jsonFile, Path binaryFile) throws IOException {
+    Set<PosixFilePermission> source;
+    try {
+      source = Files.getPosixFilePermissions(jsonFile);
+    } catch (UnsupportedOperationException ex) {
+      return;
+    }
+    Set<PosixFilePermission> perms = EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE);
+    if (source.contains(PosixFilePermission.GROUP_READ)) {
+      perms.add(PosixFilePermission.GROUP_READ);
+    }
+    if (source.contains(PosixFilePermission.OTHERS_READ)) {
+      perms.add(PosixFilePermission.OTHERS_READ);
+    }
+    Files.setPosixFilePermissions(binaryFile, perms);
+  }
+
+  private static void transcode(JsonParser p, Writer w, long size, long modified) throws IOException {
+    Map<String, Integer> keyIndex = new HashMap<>();
+    List<String> keys = new ArrayList<>();
+    // Position of the count/length pair of each open container and its count so far
+    long[] headers = new long[16];
+    int[] counts = new int[16];
+    int depth = 0;
+
+    w.putInt(MAGIC);
+    w.putInt(VERSION);
+    w.putLong(size);
+    w.putLong(modified);
+    w.putInt(0);
+    w.putInt(0);
+
+    while (p.hasNext()) {
+      JsonToken t = p.next();
+      if (t == JsonToken.UNKNOWN) {
+        continue;
+      }
+      if (depth > 0 && t != JsonToken.OBJECT_NAME && t != JsonToken.END_OBJECT && t != JsonToken.END_ARRAY) {
+        counts[depth-1]++;
+      }
+      switch (t) {
+      case START_OBJECT:
+      case START_ARRAY:
+        if (depth == headers.length) {
+          headers = Arrays.copyOf(headers, depth * 2);
+          counts = Arrays.copyOf(counts, depth * 2);
+        }
+        w.put((t == JsonToken.START_OBJECT) ? START_OBJECT : START_ARRAY);
+        headers[depth] = w.position();
+        counts[depth] = 0;
+        w.putInt(0);
+        w.putInt(0);
+        depth++;
+        break;
+      case END_OBJECT:
+      case END_ARRAY:
+        depth--;
+        w.put((t == JsonToken.END_OBJECT) ? END_OBJECT : END_ARRAY);
+        w.patchInt(headers[depth], counts[depth]);
+        w.patchInt(headers[depth] + 4, (int) (w.position() - headers[depth] - 8));
+        break;
+      case OBJECT_NAME:
+        Integer key = keyIndex.get(p.get());
+        if (key == null) {
+          key = keys.size();
+          keys.add(p.get());
+          keyIndex.put(p.get(), key);
+        }
+        w.put(OBJECT_NAME);
+        w.putInt(key);
+        break;
+      case VALUE_STRING:
+        w.put(STRING);
+        w.putString(p.get());
+        break;
+      case VALUE_NUMBER:
+        writeNumber(w, p.get());
+        break;
+      case VALUE_BOOLEAN:
+        w.put(p.getAsBoolean() ? TRUE : FALSE);
+        break;
+      case VALUE_NULL:
+        w.put(NULL);
+        break;
+      default:
+        break;
+      }
+    }
+
+    if (depth != 0) {
+      throw new JsonParser.ParseException("Reached end of file before resolving");
+    }
+    long dictionary = w.position();
+    if (dictionary > Integer.MAX_VALUE) {
+      throw new IOException("Binary JSON too large");
+    }
+    for (String k : keys) {
+      w.putString(k);
+    }
+    w.patchInt(24, (int) dictionary);
+    w.patchInt(28, keys.size());
+  }
+
+  private static void writeNumber(Writer w, String text) throws IOException {
+    if (isIntegral(text)) {
+      long l = Long.parseLong(text);
+      if (Long.toString(l).equals(text)) {
+        w.put(LONG);
+        w.putLong(l);
+        return;
+      }
+    }
+    double d;
+    try {
+      d = Double.parseDouble(text);
+    } catch (NumberFormatException ex) {
+      // The text parser lets malformed numbers such as "-" through; keep the
+      // text and let readers fail on it as JsonParser would
+      w.put(NUMBER);
+      w.putDouble(Double.NaN);
+      w.putString(text);
+      return;
+    }
+    if (Double.toString(d).equals(text)) {
+      w.put(DOUBLE);
+      w.putDouble(d);
+    } else {
+      w.put(NUMBER);
+      w.putDouble(d);
+      w.putString(text);
+    }
+  }
+
+  private static boolean isIntegral(String text) {
+    int start = (text.charAt(0) == '-') ? 1 : 0;
+    int digits = text.length() - start;
+    if (digits == 0 || digits > 18) {
+      return false;
+    }
+    for (int i=start; i < text.length(); i++) {
+      if (! Character.isDigit(text.charAt(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private JsonBinary openFile(Path binaryFile) throws IOException {
+    this.channel = FileChannel.open(binaryFile, StandardOpenOption.READ);
+    this.store = this.channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    if (store.limit() < HEADER_SIZE || store.getInt(0) != MAGIC || store.getInt(4) != VERSION) {
+      close();
+      throw new IOException("Invalid binary JSON file: " + binaryFile);
+    }
+    // The header is not trusted: a truncated or damaged file must fail here
+    // with an IOException so callers can rebuild or fall back
+    this.streamEnd = store.getInt(24);
+    int count = store.getInt(28);
+    ByteBuffer b = store.duplicate();
+    if (streamEnd < HEADER_SIZE || streamEnd > b.limit() || count < 0 || count > (b.limit() - streamEnd) / 4) {
+      close();
+      throw new IOException("Damaged binary JSON file: " + binaryFile);
+    }
+    b.position(streamEnd);
+    this.keys = new String[count];
+    for (int i=0; i < keys.length; i++) {
+      int length = (b.remaining() >= 4) ? b.getInt() : -1;
+      if (length < 0 || length > b.remaining()) {
+        close();
+        throw new IOException("Damaged binary JSON file: " + binaryFile);
+      }
+      byte[] ba = new byte[length];
+      b.get(ba);
+      keys[i] = new String(ba, StandardCharsets.UTF_8);
+    }
+    if (b.hasRemaining()) {
+      close();
+      throw new IOException("Damaged binary JSON file: " + binaryFile);
+    }
+    return this;
+  }
+
+  public boolean isCached() {
+    return this.source == null;
+  }
+
+  public JsonPullParser parser() throws IOException {
+    if (isCached()) {
+      return new JsonBinaryParser.Builder(this).build();
+    }
+    return new JsonParser.Builder(source).build();
+  }
+
+  protected ByteBuffer getStore() {
+    if (! isCached()) {
+      throw new IllegalStateException("No binary form available, use parser()");
+    }
+    ByteBuffer b = this.store.duplicate();
+    b.position(HEADER_SIZE);
+    b.limit(streamEnd);
+    return b;
+  }
+
+  protected String getKey(int index) {
+    return this.keys[index];
+  }
+
+  public int size() {
+    return isCached() ? this.store.limit() : source.size();
+  }
+
+  public void close() throws IOException {
+    if (! isCached()) {
+      source.close();
+      return;
+    }
+    this.store = null;
+    this.channel.close();
+  }
+
+  private static class Writer implements AutoCloseable {
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+    private long flushed = 0;
+
+    Writer(FileChannel channel) {
+      this.channel = channel;
+    }
+
+    long position() {
+      return flushed + buffer.position();
+    }
+
+    private void ensure(int n) throws IOException {
+      if (buffer.remaining() < n) {
+        flush();
+      }
+    }
+
+    private void flush() throws IOException {
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        flushed += channel.write(buffer, flushed);
+      }
+      buffer.clear();
+    }
+
+    void put(byte b) throws IOException {
+      ensure(1);
+      buffer.put(b);
+    }
+
+    void putInt(int v) throws IOException {
+      ensure(4);
+      buffer.putInt(v);
+    }
+
+    void putLong(long v) throws IOException {
+      ensure(8);
+      buffer.putLong(v);
+    }
+
+    void putDouble(double v) throws IOException {
+      ensure(8);
+      buffer.putDouble(v);
+    }
+
+    void putString(String s) throws IOException {
+      byte[] ba = s.getBytes(StandardCharsets.UTF_8);
+      putInt(ba.length);
+      if (ba.length > buffer.capacity()) {
+        flush();
+        ByteBuffer wrapped = ByteBuffer.wrap(ba);
+        while (wrapped.hasRemaining()) {
+          flushed += channel.write(wrapped, flushed);
+        }
+      } else {
+        ensure(ba.length);
+        buffer.put(ba);
+      }
+    }
+
+    void patchInt(long pos, int v) throws IOException {
+      if (pos >= flushed) {
+        buffer.putInt((int) (pos - flushed), v);
+      } else {
+        ByteBuffer b = ByteBuffer.allocate(4);
+        b.putInt(v);
+        b.flip();
+        while (b.hasRemaining()) {
+          channel.write(b, pos + b.position());
+        }
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        flush();
+      } finally {
+        channel.close();
+      }
+    }
+  }
+}
@@ -0,0 +1,227 @@
+package org.agmip.data.json;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Pull parser over a {@link JsonBinary}. It yields the same tokens, depths
+ * and value text as {@link JsonParser} over the source document, but it is
+ * not a drop-in replacement: {@link #get()} returns {@code null} on
+ * container tokens, and {@link #getSize()} has no text counterpart.
+ *
+ * Numbers are read back without any text parsing, and {@link #skip(int)}
+ * jumps over containers using their stored length.
+ */
+public class JsonBinaryParser implements JsonPullParser {
+  private final JsonBinary binary;
+  private final ByteBuffer buffer;
+  private final int start;
+  private int currentDepth = 0;
+  private int[] ends = new int[16];
+  private boolean[] arrays = new boolean[16];
+  private byte kind;
+  private int size = -1;
+  private long longValue;
+  private double doubleValue;
+  private int stringPosition;
+  private int stringLength;
+  private String current;
+  private byte[] raw = new byte[64];
+
+  private JsonBinaryParser(Builder builder) {
+    this.binary = builder.binary;
+    this.buffer = builder.binary.getStore();
+    this.start = buffer.position();
+  }
+
+  public boolean hasNext() {
+    return buffer.hasRemaining();
+  }
+
+  public JsonToken next() throws IOException {
+    if (! buffer.hasRemaining()) {
+      return JsonToken.UNKNOWN;
+    }
+    kind = buffer.get();
+    current = null;
+    switch (kind) {
+    case JsonBinary.START_OBJECT:
+    case JsonBinary.START_ARRAY:
+      size = buffer.getInt();
+      int length = buffer.getInt();
+      if (currentDepth == ends.length) {
+        ends = Arrays.copyOf(ends, currentDepth * 2);
+        arrays = Arrays.copyOf(arrays, currentDepth * 2);
+      }
+      ends[currentDepth] = buffer.position() + length;
+      arrays[currentDepth] = (kind == JsonBinary.START_ARRAY);
+      currentDepth++;
+      return (kind == JsonBinary.START_OBJECT) ? JsonToken.START_OBJECT : JsonToken.START_ARRAY;
+    case JsonBinary.END_OBJECT:
+      currentDepth--;
+      return JsonToken.END_OBJECT;
+    case JsonBinary.END_ARRAY:
+      currentDepth--;
+      return JsonToken.END_ARRAY;
+    case JsonBinary.OBJECT_NAME:
+      current = binary.getKey(buffer.getInt());
+      return JsonToken.OBJECT_NAME;
+    case JsonBinary.NUMBER:
+      doubleValue = buffer.getDouble();
+      skipText();
+      return JsonToken.VALUE_NUMBER;
+    case JsonBinary.STRING:
+      skipText();
+      return JsonToken.VALUE_STRING;
+    case JsonBinary.LONG:
+      longValue = buffer.getLong();
+      return JsonToken.VALUE_NUMBER;
+    case JsonBinary.DOUBLE:
+      doubleValue = buffer.getDouble();
+      return JsonToken.VALUE_NUMBER;
+    case JsonBinary.TRUE:
+    case JsonBinary.FALSE:
+      return JsonToken.VALUE_BOOLEAN;
+    case JsonBinary.NULL:
+      return JsonToken.VALUE_NULL;
+    default:
+      throw new IOException("Invalid binary JSON tag " + kind + " at " + (buffer.position()-1));
+    }
+  }
+
+  // Remembers where the length prefixed text is so get() can decode it lazily
+  private void skipText() {
+    stringLength = buffer.getInt();
+    stringPosition = buffer.position();
+    buffer.position(stringPosition + stringLength);
+  }
+
+  public JsonToken skip() throws IOException {
+    return skip(1);
+  }
+
+  public JsonToken skip(int depth) throws IOException {
+    int targetDepth = currentDepth - depth;
+    if (depth < 1) {
+      return JsonToken.UNKNOWN;
+    }
+    if (targetDepth < 1) {
+      buffer.position(buffer.limit());
+      return JsonToken.UNKNOWN;
+    }
+    buffer.position(ends[targetDepth]);
+    currentDepth = targetDepth;
+    kind = arrays[targetDepth] ? JsonBinary.END_ARRAY : JsonBinary.END_OBJECT;
+    current = null;
+    return arrays[targetDepth] ? JsonToken.END_ARRAY : JsonToken.END_OBJECT;
+  }
+
+  public void rewind() {
+    buffer.position(start);
+    currentDepth = 0;
+  }
+
+  public int getDepth() {
+    return this.currentDepth;
+  }
+
+  /**
+   * Number of members or elements of the container started by the last
+   * START_OBJECT or START_ARRAY token.
+   */
+  public int getSize() {
+    return this.size;
+  }
+
+  public String get() {
+    if (current != null) {
+      return current;
+    }
+    switch (kind) {
+    case JsonBinary.STRING:
+    case JsonBinary.NUMBER:
+      if (raw.length < stringLength) {
+        raw = new byte[Math.max(stringLength, raw.length*2)];
+      }
+      ByteBuffer b = buffer.duplicate();
+      b.position(stringPosition);
+      b.get(raw, 0, stringLength);
+      current = new String(raw, 0, stringLength, StandardCharsets.UTF_8);
+      break;
+    case JsonBinary.LONG:
+      current = Long.toString(longValue);
+      break;
+    case JsonBinary.DOUBLE:
+      current = Double.toString(doubleValue);
+      break;
+    case JsonBinary.TRUE:
+      current = "true";
+      break;
+    case JsonBinary.FALSE:
+      current = "false";
+      break;
+    default:
+      break;
+    }
+    return current;
+  }
+
+  public BigDecimal getAsBigDecimal() {
+    switch (kind) {
+    case JsonBinary.LONG:
+      return BigDecimal.valueOf(longValue);
+    case JsonBinary.DOUBLE:
+      // The stored text is Double.toString(), which is what valueOf() uses
+      return BigDecimal.valueOf(doubleValue);
+    default:
+      return new BigDecimal(get());
+    }
+  }
+
+  public double getAsDouble() {
+    switch (kind) {
+    case JsonBinary.LONG:
+      return longValue;
+    case JsonBinary.DOUBLE:
+      return doubleValue;
+    case JsonBinary.NUMBER:
+      // NaN marks text that is not a number, which must fail like JsonParser
+      return Double.isNaN(doubleValue) ? Double.parseDouble(get()) : doubleValue;
+    default:
+      return Double.parseDouble(get());
+    }
+  }
+
+  public long getAsLong() {
+    if (kind == JsonBinary.LONG) {
+      return longValue;
+    }
+    if (kind == JsonBinary.DOUBLE && Math.abs(doubleValue) < 0x1p63) {
+      return (long) doubleValue;
+    }
+    return getAsBigDecimal().longValue();
+  }
+
+  public int getAsInt() {
+    return (int) getAsLong();
+  }
+
+  public boolean getAsBoolean() {
+    return kind == JsonBinary.TRUE || (kind != JsonBinary.FALSE && Boolean.parseBoolean(get()));
+  }
+
+  public static class Builder {
+    private final JsonBinary binary;
+
+    public Builder(JsonBinary binary) {
+      this.binary = binary;
+    }
+
+    public JsonBinaryParser build() {
+      return new JsonBinaryParser(this);
+    }
+  }
+}
@@ -0,0 +1,531 @@
+package org.agmip.data.json;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Extracts an array of homogeneous objects into primitive columns in a
+ * single pass of a {@link JsonPullParser}, without building intermediate maps.
+ *
+ * The array is located with a dotted path (see {@link JsonAggregator}), e.g.
+ * {@code weathers.*.dailyWeather}, or the empty path for a top-level array.
+ * Every array matching the path is appended to the same table; the table
+ * records the first row of each array and, when a parent key such as
+ * {@code weathers.*.wst_id} is set, the key of the object holding it.
+ * Members missing from a record are filled with {@link #MISSING_DOUBLE},
+ * {@link #MISSING_LONG} or {@link #MISSING_CODE}.
+ *
+ * Tables filled independently (e.g. one per file or thread) can be joined
+ * with {@link Table#append(Table)}, followed by a single {@link Table#trim()}.
+ */
+public class JsonColumns {
+  public enum Type {
+    DOUBLE(8),
+    LONG(8),
+    STRING(4);
+
+    private final int width;
+
+    Type(int width) {
+      this.width = width;
+    }
+  }
+
+  public static final double MISSING_DOUBLE = Double.NaN;
+  public static final long MISSING_LONG = Long.MIN_VALUE;
+  public static final int MISSING_CODE = -1;
+
+  private final String[] arrayPath;
+  private final String[] keyPath;
+  private final String[] names;
+  private final Type[] types;
+  private final boolean offHeap;
+  private final int initialCapacity;
+
+  private JsonColumns(Builder builder) {
+    this.arrayPath = builder.arrayPath;
+    this.keyPath = builder.keyPath;
+    this.names = builder.names.toArray(new String[builder.names.size()]);
+    this.types = builder.types.toArray(new Type[builder.types.size()]);
+    this.offHeap = builder.offHeap;
+    this.initialCapacity = builder.initialCapacity;
+  }
+
+  public Table extract(JsonPullParser parser) throws IOException {
+    Table table = newTable();
+    Map<String, Integer> index = new HashMap<>();
+    for (int i=0; i < names.length; i++) {
+      index.put(names[i], i);
+    }
+    int arrayDepth = arrayPath.length + 1;
+    int recordDepth = arrayDepth + 1;
+    int keyDepth = (keyPath == null) ? -1 : keyPath.length;
+    boolean inArray = false;
+    int column = -1;
+    // First array started in the current parent object and its key so far
+    int parentFrom = -1;
+    String parentKey = null;
+    JsonPath path = new JsonPath();
+
+    while (parser.hasNext()) {
+      JsonToken t = parser.next();
+      int depth = parser.getDepth();
+      path.update(t, parser);
+      switch (t) {
+      case START_ARRAY:
+        if (! inArray && depth == arrayDepth && path.matches(arrayPath, arrayPath.length)) {
+          inArray = true;
+          table.startArray();
+        }
+        break;
+      case END_ARRAY:
+        if (inArray && depth == arrayDepth-1) {
+          inArray = false;
+        }
+        break;
+      case START_OBJECT:
+        if (inArray && depth == recordDepth) {
+          table.startRow();
+        } else if (! inArray && depth == keyDepth && path.matches(keyPath, depth-1)) {
+          parentFrom = table.arrays;
+          parentKey = null;
+        }
+        break;
+      case END_OBJECT:
+        if (inArray && depth == arrayDepth) {
+          table.rows++;
+        } else if (parentFrom != -1 && depth == keyDepth-1) {
+          // The key may come after the array, so assign it when the parent closes
+          for (int i=parentFrom; i < table.arrays; i++) {
+            table.arrayKeys[i] = parentKey;
+          }
+          parentFrom = -1;
+        }
+        break;
+      case OBJECT_NAME:
+        if (inArray && depth == recordDepth) {
+          Integer i = index.get(parser.get());
+          column = (i == null) ? -1 : i;
+        }
+        break;
+      case VALUE_STRING:
+      case VALUE_NUMBER:
+      case VALUE_BOOLEAN:
+        if (inArray && depth == recordDepth && column != -1) {
+          table.columns[column].set(table.rows, t, parser);
+        } else if (parentFrom != -1 && depth == keyDepth && path.matches(keyPath, depth)) {
+          parentKey = parser.get();
+        }
+        break;
+      default:
+        break;
+      }
+    }
+    table.trim();
+    return table;
+  }
+
+  public Table newTable() {
+    Column[] columns = new Column[names.length];
+    for (int i=0; i < names.length; i++) {
+      columns[i] = new Column(names[i], types[i], offHeap, initialCapacity);
+    }
+    return new Table(columns);
+  }
+
+  public static class Table {
+    private final Column[] columns;
+    private int rows = 0;
+    private int[] arrayStarts = new int[4];
+    private String[] arrayKeys = new String[4];
+    private int arrays = 0;
+
+    private Table(Column[] columns) {
+      this.columns = columns;
+    }
+
+    private void startArray() {
+      addArray(rows, null);
+    }
+
+    private void addArray(int start, String key) {
+      if (arrays == arrayStarts.length) {
+        arrayStarts = Arrays.copyOf(arrayStarts, arrays * 2);
+        arrayKeys = Arrays.copyOf(arrayKeys, arrays * 2);
+      }
+      arrayStarts[arrays] = start;
+      arrayKeys[arrays] = key;
+      arrays++;
+    }
+
+    private void startRow() {
+      for (Column c : columns) {
+        c.setMissing(rows);
+      }
+    }
+
+    /**
+     * Releases spare capacity left by {@link #append(Table)}. Call it once
+     * after the last append instead of after each one.
+     */
+    public void trim() {
+      for (Column c : columns) {
+        c.trim(rows);
+      }
+    }
+
+    public int getRowCount() {
+      return rows;
+    }
+
+    /** Number of matched arrays whose records make up this table. */
+    public int getArrayCount() {
+      return arrays;
+    }
+
+    /** First row of the given array. */
+    public int getArrayStart(int array) {
+      return arrayStarts[array];
+    }
+
+    /** Row after the last one of the given array. */
+    public int getArrayEnd(int array) {
+      return (array+1 < arrays) ? arrayStarts[array+1] : rows;
+    }
+
+    /** Parent key of the given array, or {@code null} if none was set or found. */
+    public String getArrayKey(int array) {
+      return arrayKeys[array];
+    }
+
+    public List<Column> getColumns() {
+      return Collections.unmodifiableList(Arrays.asList(columns));
+    }
+
+    public Column getColumn(String name) {
+      for (Column c : columns) {
+        if (c.name.equals(name)) {
+          return c;
+        }
+      }
+      return null;
+    }
+
+    public Table append(Table other) {
+      if (other.columns.length != columns.length) {
+        throw new IllegalArgumentException("Cannot append tables with different columns");
+      }
+      for (int i=0; i < columns.length; i++) {
+        columns[i].append(rows, other.columns[i], other.rows);
+      }
+      for (int i=0; i < other.arrays; i++) {
+        addArray(rows + other.arrayStarts[i], other.arrayKeys[i]);
+      }
+      rows += other.rows;
+      return this;
+    }
+  }
+
+  public static class Column {
+    private final String name;
+    private final Type type;
+    private final boolean offHeap;
+    private int capacity;
+    private int size = 0;
+    private double[] doubles;
+    private long[] longs;
+    private int[] codes;
+    private ByteBuffer direct;
+    private List<String> dictionary;
+    private Map<String, Integer> dictionaryIndex;
+
+    private Column(String name, Type type, boolean offHeap, int capacity) {
+      this.name = name;
+      this.type = type;
+      this.offHeap = offHeap;
+      this.capacity = 0;
+      if (type == Type.STRING) {
+        this.dictionary = new ArrayList<>();
+        this.dictionaryIndex = new HashMap<>();
+      }
+      resize(capacity);
+    }
+
+    private void resize(int size) {
+      if (offHeap) {
+        ByteBuffer b = ByteBuffer.allocateDirect(size * type.width).order(ByteOrder.nativeOrder());
+        if (direct != null) {
+          ByteBuffer old = direct.duplicate();
+          old.position(0).limit(Math.min(capacity, size) * type.width);
+          b.put(old);
+          b.clear();
+        }
+        direct = b;
+      } else {
+        switch (type) {
+        case DOUBLE:
+          doubles = (doubles == null) ? new double[size] : Arrays.copyOf(doubles, size);
+          break;
+        case LONG:
+          longs = (longs == null) ? new long[size] : Arrays.copyOf(longs, size);
+          break;
+        case STRING:
+          codes = (codes == null) ? new int[size] : Arrays.copyOf(codes, size);
+          break;
+        }
+      }
+      capacity = size;
+    }
+
+    private void ensure(int row) {
+      if (row >= capacity) {
+        resize(Math.max(row+1, capacity*2));
+      }
+    }
+
+    private void trim(int rows) {
+      if (rows != capacity) {
+        resize(rows);
+      }
+    }
+
+    private void setMissing(int row) {
+      ensure(row);
+      size = row+1;
+      switch (type) {
+      case DOUBLE:
+        putDouble(row, MISSING_DOUBLE);
+        break;
+      case LONG:
+        putLong(row, MISSING_LONG);
+        break;
+      case STRING:
+        putCode(row, MISSING_CODE);
+        break;
+      }
+    }
+
+    // Numbers are read through the parser so pre-decoded values (see
+    // JsonBinaryParser) are used as is; only strings are parsed here
+    private void set(int row, JsonToken t, JsonPullParser parser) {
+      switch (type) {
+      case DOUBLE:
+        if (t == JsonToken.VALUE_NUMBER) {
+          try {
+            putDouble(row, parser.getAsDouble());
+          } catch (NumberFormatException ex) {
+            // Malformed number such as "-", leave as missing
+          }
+        } else if (t == JsonToken.VALUE_STRING) {
+          putDouble(row, JsonNumbers.parseDouble(parser.get()));
+        }
+        break;
+      case LONG:
+        if (t == JsonToken.VALUE_NUMBER) {
+          try {
+            long l = parser.getAsLong();
+            double d = parser.getAsDouble();
+            // Fractional or out of range, leave as missing
+            if (l == d && Math.abs(d) < 0x1p63) {
+              putLong(row, l);
+            }
+          } catch (NumberFormatException ex) {
+            // Malformed number such as "-", leave as missing
+          }
+        } else if (t == JsonToken.VALUE_STRING) {
+          String value = parser.get();
+          if (JsonNumbers.isLong(value)) {
+            putLong(row, Long.parseLong(value));
+          } else if (JsonNumbers.isNumber(value)) {
+            try {
+              putLong(row, new BigDecimal(value).longValueExact());
+            } catch (ArithmeticException ex) {
+              // Fractional or out of range, leave as missing
+            }
+          }
+        }
+        break;
+      case STRING:
+        putCode(row, encode(parser.get()));
+        break;
+      }
+    }
+
+    private int encode(String value) {
+      Integer code = dictionaryIndex.get(value);
+      if (code == null) {
+        code = dictionary.size();
+        dictionary.add(value);
+        dictionaryIndex.put(value, code);
+      }
+      return code;
+    }
+
+    private void putDouble(int row, double v) {
+      if (offHeap) {
+        direct.putDouble(row * 8, v);
+      } else {
+        doubles[row] = v;
+      }
+    }
+
+    private void putLong(int row, long v) {
+      if (offHeap) {
+        direct.putLong(row * 8, v);
+      } else {
+        longs[row] = v;
+      }
+    }
+
+    private void putCode(int row, int v) {
+      if (offHeap) {
+        direct.putInt(row * 4, v);
+      } else {
+        codes[row] = v;
+      }
+    }
+
+    private void append(int rows, Column other, int otherRows) {
+      if (other.type != type) {
+        throw new IllegalArgumentException("Cannot append " + other.type + " column to " + type + " column " + name);
+      }
+      ensure(rows + otherRows - 1);
+      size = rows + otherRows;
+      for (int i=0; i < otherRows; i++) {
+        switch (type) {
+        case DOUBLE:
+          putDouble(rows+i, other.getDouble(i));
+          break;
+        case LONG:
+          putLong(rows+i, other.getLong(i));
+          break;
+        case STRING:
+          int code = other.getCode(i);
+          putCode(rows+i, (code == MISSING_CODE) ? MISSING_CODE : encode(other.dictionary.get(code)));
+          break;
+        }
+      }
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public Type getType() {
+      return type;
+    }
+
+    public int size() {
+      return size;
+    }
+
+    public boolean isOffHeap() {
+      return offHeap;
+    }
+
+    public double getDouble(int row) {
+      return offHeap ? direct.getDouble(row * 8) : doubles[row];
+    }
+
+    public long getLong(int row) {
+      return offHeap ? direct.getLong(row * 8) : longs[row];
+    }
+
+    public int getCode(int row) {
+      return offHeap ? direct.getInt(row * 4) : codes[row];
+    }
+
+    public String getString(int row) {
+      int code = getCode(row);
+      return (code == MISSING_CODE) ? null : dictionary.get(code);
+    }
+
+    public List<String> getDictionary() {
+      return Collections.unmodifiableList(dictionary);
+    }
+
+    /** Backing array, longer than {@link #size()} until the table is trimmed. */
+    public double[] getDoubles() {
+      return doubles;
+    }
+
+    /** Backing array, longer than {@link #size()} until the table is trimmed. */
+    public long[] getLongs() {
+      return longs;
+    }
+
+    /** Backing array, longer than {@link #size()} until the table is trimmed. */
+    public int[] getCodes() {
+      return codes;
+    }
+
+    public ByteBuffer getBuffer() {
+      if (direct == null) {
+        return null;
+      }
+      ByteBuffer b = direct.asReadOnlyBuffer().order(ByteOrder.nativeOrder());
+      b.limit(size * type.width);
+      return b;
+    }
+  }
+
+  public static class Builder {
+    private final String[] arrayPath;
+    private String[] keyPath = null;
+    private final List<String> names = new ArrayList<>();
+    private final List<Type> types = new ArrayList<>();
+    private boolean offHeap = false;
+    private int initialCapacity = 1024;
+
+    public Builder(String arrayPath) {
+      this.arrayPath = arrayPath.isEmpty() ? new String[0] : JsonPath.compile(arrayPath);
+    }
+
+    /**
+     * Records, for each matched array, the value at {@code path} in the
+     * object holding the array, e.g. {@code weathers.*.wst_id}.
+     */
+    public Builder parentKey(String path) {
+      String[] compiled = JsonPath.compile(path);
+      if (compiled.length != arrayPath.length) {
+        throw new IllegalArgumentException("Parent key must be a sibling of the array: " + path);
+      }
+      this.keyPath = compiled;
+      return this;
+    }
+
+    public Builder column(String name, Type type) {
+      if (names.contains(name)) {
+        throw new IllegalArgumentException("Duplicate column: " + name);
+      }
+      this.names.add(name);
+      this.types.add(type);
+      return this;
+    }
+
+    public Builder setOffHeap(boolean offHeap) {
+      this.offHeap = offHeap;
+      return this;
+    }
+
+    public Builder setInitialCapacity(int capacity) {
+      this.initialCapacity = Math.max(1, capacity);
+      return this;
+    }
+
+    public JsonColumns build() {
+      if (names.isEmpty()) {
+        throw new IllegalStateException("No columns defined");
+      }
+      return new JsonColumns(this);
+    }
+  }
+}
@@ -0,0 +1,79 @@
+package org.agmip.data.json;
+
+/**
+ * Reads numbers that were written as JSON strings, as is common in AgMIP
+ * data. Only the JSON number grammar is accepted (leading zeros aside), so
+ * "NaN", "Infinity", "1.5d", hex floats and padded text are not numbers.
+ */
+final class JsonNumbers {
+  private JsonNumbers() {}
+
+  static boolean isNumber(String s) {
+    int i = 0;
+    int n = s.length();
+    if (i < n && s.charAt(i) == '-') {
+      i++;
+    }
+    int digits = i;
+    while (i < n && isDigit(s.charAt(i))) {
+      i++;
+    }
+    if (i == digits) {
+      return false;
+    }
+    if (i < n && s.charAt(i) == '.') {
+      digits = ++i;
+      while (i < n && isDigit(s.charAt(i))) {
+        i++;
+      }
+      if (i == digits) {
+        return false;
+      }
+    }
+    if (i < n && (s.charAt(i) == 'e' || s.charAt(i) == 'E')) {
+      i++;
+      if (i < n && (s.charAt(i) == '+' || s.charAt(i) == '-')) {
+        i++;
+      }
+      digits = i;
+      while (i < n && isDigit(s.charAt(i))) {
+        i++;
+      }
+      if (i == digits) {
+        return false;
+      }
+    }
+    return i == n;
+  }
+
+  /** Whether {@code s} is an integer that always fits in a long. */
+  static boolean isLong(String s) {
+    int start = (s.length() > 0 && s.charAt(0) == '-') ? 1 : 0;
+    int digits = s.length() - start;
+    if (digits == 0 || digits > 18) {
+      return false;
+    }
+    for (int i=start; i < s.length(); i++) {
+      if (! isDigit(s.charAt(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the finite value of {@code s}, or NaN when it is not a number or
+   * does not fit in a double.
+   */
+  static double parseDouble(String s) {
+    if (! isNumber(s)) {
+      return Double.NaN;
+    }
+    double value = Double.parseDouble(s);
+    return Double.isInfinite(value) ? Double.NaN : value;
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+}
@@ -9,7 +9,7 @@ import java.util.Deque;
 
 //TODO: Documentation (Javadoc)
 
-public class JsonParser {
+public class JsonParser implements JsonPullParser {
   public enum State {
     UNKNOWN,
     OBJECT_STARTED,
@@ -30,6 +30,9 @@ public class JsonParser {
   private Deque<State> stack = new ArrayDeque<>();
   private Deque<Integer> arrayTrace = new ArrayDeque<>();
   private String current;
+  private boolean escaped = false;
+  private byte[] raw = new byte[64];
+  private final StringBuilder decoded = new StringBuilder();
 
   private JsonParser(Builder builder) throws IOException {
     this.buffer = builder.json.getStore().duplicate();
@@ -51,6 +54,7 @@ public class JsonParser {
 
   private int nextUnescapedDoubleQuotePosition() throws IOException {
     boolean inEscape = false;
+    escaped = false;
     while (buffer.hasRemaining()) {
       char c = (char) JsonReader.read(buffer);
       if (inEscape) {
@@ -69,14 +73,11 @@ public class JsonParser {
           inEscape = false;
           break;
         case 'u':
-          char[] hex = new char[4];
-          for(int i=0;i < 4; i++) {
-            hex[i] = (char) JsonReader.read(buffer);
-          }
+          int hex = readHex();
           if (this.debugMode) {
-            System.out.print("[DEBUG] Found escape sequence \\");
-            for(int i=0;i < 4;i++) {
-              System.out.print(hex[i]);
+            System.out.print("[DEBUG] Found escape sequence \\u");
+            for (int i=12; i >= 0; i -= 4) {
+              System.out.print(Character.forDigit((hex >> i) & 0xf, 16));
             }
             System.out.println();
           }
@@ -88,6 +89,7 @@ public class JsonParser {
       } else {
         if ('\\' == c) {
           inEscape = true;
+          escaped = true;
         } else if ('"' == c) {
           return buffer.position()-1;
         }
@@ -96,6 +98,25 @@ public class JsonParser {
     return -1;
   }
 
+  private int readHex() throws IOException {
+    int value = 0;
+    for (int i=0; i < 4; i++) {
+      int c = JsonReader.read(buffer);
+      int digit;
+      if (c >= '0' && c <= '9') {
+        digit = c - '0';
+      } else if (c >= 'a' && c <= 'f') {
+        digit = c - 'a' + 10;
+      } else if (c >= 'A' && c <= 'F') {
+        digit = c - 'A' + 10;
+      } else {
+        throw new ParseException("Invalid unicode escape sequence");
+      }
+      value = (value << 4) | digit;
+    }
+    return value;
+  }
+
   private int lastNumberPosition() throws IOException {
     boolean isDecimal = false;
     boolean isE = false;
@@ -133,6 +154,8 @@ public class JsonParser {
         case '\f':
           return buffer.position()-1;
         case ',':
+        case '}':
+        case ']':
           return buffer.position()-1;
         default:
           throw new ParseException("Invalid number");
@@ -143,11 +166,55 @@ public class JsonParser {
   }
 
   private String extract(int start, int end) {
-    byte[] ba = new byte[end-start];
+    int length = end-start;
+    if (raw.length < length) {
+      raw = new byte[Math.max(length, raw.length*2)];
+    }
     buffer.position(start);
-    buffer.get(ba);
+    buffer.get(raw, 0, length);
     buffer.position(end+1);
-    return new String(ba, StandardCharsets.UTF_8);
+    return new String(raw, 0, length, StandardCharsets.UTF_8);
+  }
+
+  // Only called for strings known to contain escapes; everything else goes
+  // straight through extract(). Surrogate pairs written as two \\u escapes
+  // land next to each other in the builder and form a single code point.
+  private String unescape(int start, int end) throws IOException {
+    decoded.setLength(0);
+    buffer.position(start);
+    while (buffer.position() < end) {
+      int c = JsonReader.read(buffer);
+      if (c != '\\') {
+        decoded.appendCodePoint(c);
+        continue;
+      }
+      c = JsonReader.read(buffer);
+      switch (c) {
+      case 'b':
+        decoded.append('\b');
+        break;
+      case 'f':
+        decoded.append('\f');
+        break;
+      case 'n':
+        decoded.append('\n');
+        break;
+      case 'r':
+        decoded.append('\r');
+        break;
+      case 't':
+        decoded.append('\t');
+        break;
+      case 'u':
+        decoded.append((char) readHex());
+        break;
+      default:
+        decoded.append((char) c);
+        break;
+      }
+    }
+    buffer.position(end+1);
+    return decoded.toString();
   }
 
   public boolean hasNext() {
@@ -244,7 +311,7 @@ public class JsonParser {
         if (end == -1) {
           throw new ParseException("Reached end of file before resolving");
         }
-        current = extract(start, end);
+        current = escaped ? unescape(start, end) : extract(start, end);
         if (this.debugMode) {
           debugValue(current);
         }
@@ -448,7 +515,14 @@ public class JsonParser {
   }
 
   public double getAsDouble() {
-    return getAsBigDecimal().doubleValue();
+    return Double.parseDouble(current);
+  }
+
+  public long getAsLong() {
+    if (JsonNumbers.isLong(current)) {
+      return Long.parseLong(current);
+    }
+    return getAsBigDecimal().longValue();
   }
 
   public int getAsInt() {
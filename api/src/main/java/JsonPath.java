@@ -0,0 +1,61 @@
+package org.agmip.data.json;
+
+import java.util.Arrays;
+
+/**
+ * Tracks the object names leading to the current token of a
+ * {@link JsonPullParser} so it can be matched against dotted paths, where
+ * {@code *} matches any name or array element.
+ */
+final class JsonPath {
+  private String[] segments = new String[16];
+  private boolean[] arrays = new boolean[16];
+  private String name = null;
+
+  static String[] compile(String path) {
+    if (path == null || path.isEmpty()) {
+      throw new IllegalArgumentException("Invalid path: " + path);
+    }
+    return path.split("\\.");
+  }
+
+  void update(JsonToken t, JsonPullParser parser) {
+    int depth = parser.getDepth();
+    switch (t) {
+    case OBJECT_NAME:
+      name = parser.get();
+      break;
+    case START_OBJECT:
+    case START_ARRAY:
+      if (depth > arrays.length) {
+        segments = Arrays.copyOf(segments, depth * 2);
+        arrays = Arrays.copyOf(arrays, depth * 2);
+      }
+      if (depth > 1) {
+        segments[depth-2] = arrays[depth-2] ? null : name;
+      }
+      arrays[depth-1] = (t == JsonToken.START_ARRAY);
+      name = null;
+      break;
+    case VALUE_STRING:
+    case VALUE_NUMBER:
+    case VALUE_BOOLEAN:
+    case VALUE_NULL:
+      if (depth > 0) {
+        segments[depth-1] = arrays[depth-1] ? null : name;
+      }
+      break;
+    default:
+      break;
+    }
+  }
+
+  boolean matches(String[] path, int length) {
+    for (int i=0; i < length; i++) {
+      if (! "*".equals(path[i]) && ! path[i].equals(segments[i])) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,32 @@
+package org.agmip.data.json;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+
+/**
+ * Token-by-token access to a document, implemented by {@link JsonParser} for
+ * JSON text and {@link JsonBinaryParser} for the binary form.
+ */
+public interface JsonPullParser {
+  boolean hasNext();
+
+  JsonToken next() throws IOException;
+
+  JsonToken skip() throws IOException;
+
+  JsonToken skip(int depth) throws IOException;
+
+  int getDepth();
+
+  String get();
+
+  BigDecimal getAsBigDecimal();
+
+  double getAsDouble();
+
+  long getAsLong();
+
+  int getAsInt();
+
+  boolean getAsBoolean();
+}